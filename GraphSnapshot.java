@@ -0,0 +1,156 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+//=======================================================
+//
+//     Snapshot file of a loaded graph and its MST
+//
+//=======================================================
+
+// Saves int columns (edges, adjacency, MST results) next to a graph file
+// so a restart can skip reading the text file and recomputing the MST.
+//
+// Layout, all big-endian:
+//   int magic, int version
+//   long size and long mtime of the graph file the columns came from
+//   int column count, then for each column its length and its values
+//   long CRC32 of every byte before it
+//
+// A snapshot is only used while the graph file still has the recorded
+// size and mtime, and only if the checksum matches. The file is mapped in
+// one piece, so a snapshot is limited to 2 GB; write() refuses larger ones.
+//
+// The mapping is used as a fast bulk read, not served from: read() checks
+// the checksum over the whole file and copies every column into an int[],
+// so a restart still reads the full snapshot and holds its columns on the
+// heap. What it saves is parsing the text file and recomputing the MST.
+class GraphSnapshot {
+    private static final int MAGIC = 0x4D535453;   // "MSTS"
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 + 4 + 8 + 8 + 4;
+
+    // name of the snapshot a program (kind) keeps for a graph file
+    public static String fileFor(String graphFile, String kind) {
+        return graphFile + "." + kind + ".snap";
+    }
+
+    // Writes the columns to a temporary file then renames it over the
+    // snapshot, so a crash never leaves a half-written snapshot in place.
+    // srcSize and srcTime are the graph file's length and mtime taken
+    // before it was read, so an edit made during the run invalidates it.
+    public static void write(String graphFile, String kind, long srcSize, long srcTime,
+                             int[][] columns) throws IOException {
+        Path snap = Paths.get(fileFor(graphFile, kind));
+        Path tmp = Paths.get(fileFor(graphFile, kind) + ".tmp");
+        CRC32 crc = new CRC32();
+        long size = HEADER + 8;
+
+        for (int[] col : columns)
+            size += 4 + 4L * col.length;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("snapshot would be " + size + " bytes, more than can be mapped");
+
+        try (BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(bos, crc));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(srcSize);
+            out.writeLong(srcTime);
+            out.writeInt(columns.length);
+            for (int[] col : columns) {
+                out.writeInt(col.length);
+                for (int x : col)
+                    out.writeInt(x);
+            }
+            out.flush();
+
+            // the checksum itself is not part of what it covers
+            new DataOutputStream(bos).writeLong(crc.getValue());
+        } catch (IOException e) {
+            if (Files.isRegularFile(tmp))
+                Files.delete(tmp);
+            throw e;
+        }
+
+        Files.move(tmp, snap, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Memory-maps the snapshot of graphFile and returns its columns, or null
+    // when there is none, the graph file has changed, or the file is damaged,
+    // too large to map or cannot be read. Only the framing is checked here;
+    // callers must check the column sizes they index against.
+    public static int[][] read(String graphFile, String kind) {
+        File source = new File(graphFile);
+        File snap = new File(fileFor(graphFile, kind));
+        int[][] columns;
+        long size;
+        int n;
+
+        if (!snap.isFile() || !source.isFile())
+            return null;
+
+        try (FileChannel ch = FileChannel.open(snap.toPath(), StandardOpenOption.READ)) {
+            size = ch.size();
+            if (size < HEADER + 8 || size > Integer.MAX_VALUE)
+                return null;
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION
+                    || buf.getLong(8) != source.length() || buf.getLong(16) != source.lastModified())
+                return null;
+
+            CRC32 crc = new CRC32();
+            ByteBuffer body = buf.duplicate();
+            body.limit((int) (size - 8));
+            crc.update(body);
+            if (crc.getValue() != buf.getLong((int) (size - 8)))
+                return null;
+
+            // every column takes at least its 4 byte length
+            n = buf.getInt(HEADER - 4);
+            if (n < 0 || n > (size - HEADER - 8) / 4)
+                return null;
+
+            buf.position(HEADER);
+            columns = new int[n][];
+            for (int c = 0; c < columns.length; ++c) {
+                n = buf.getInt();
+                if (n < 0 || (long) n * 4 > size - 8 - buf.position())
+                    return null;
+
+                // bulk copy straight out of the mapping
+                IntBuffer ints = buf.asIntBuffer();
+                columns[c] = new int[n];
+                ints.get(columns[c]);
+                buf.position(buf.position() + n * 4);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return columns;
+    }
+
+    // Packs bytes four to an int, big-endian, so they can be saved as a column
+    public static int[] toInts(byte[] b) {
+        int[] a = new int[(b.length + 3) / 4];
+        ByteBuffer.wrap(java.util.Arrays.copyOf(b, a.length * 4)).asIntBuffer().get(a);
+        return a;
+    }
+
+    // The first n bytes held in a column written by toInts(), copied once
+    public static byte[] toBytes(int[] a, int n) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; ++i)
+            b[i] = (byte) (a[i >> 2] >> (24 - 8 * (i & 3)));
+        return b;
+    }
+
+} // End of class GraphSnapshot
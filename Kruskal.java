@@ -213,12 +213,26 @@ class Graph
     private Edge[] edge;
     private Edge[] mst;        
 
+    // size and mtime of the graph file when it was read, kept in snapshots
+    private long srcSize, srcTime;
+
+    // used by fromSnapshot(), which fills in the fields itself
+    private Graph()
+    {
+    }
+
     // constructor
     public Graph(String graphFile) throws IOException
     {
         int u, v;
         int w, e;
 
+        // taken before reading, so an edit made during the run is not
+        // recorded as matching the graph read here
+        File src = new File(graphFile);
+        srcSize = src.length();
+        srcTime = src.lastModified();
+
         FileReader fr = new FileReader(graphFile);
 		BufferedReader reader = new BufferedReader(fr);
 	           
@@ -256,7 +270,14 @@ class Graph
     *       Kruskal's minimum spanning tree algorithm
     *
     **********************************************************/
-    public Edge[] MST_Kruskal() 
+    public Edge[] MST_Kruskal() throws IOException
+    {
+        return MST_Kruskal(null);
+    }
+
+    // As above, but also passes each edge to sink the moment it joins the MST.
+    // With a sink the step by step printing of the sets is left out.
+    public Edge[] MST_Kruskal(MSTSink sink) throws IOException
     {
         int i = 0;
         Edge e;
@@ -271,10 +292,12 @@ class Graph
         Heap h = new Heap(E, edge);
 
         // create partition of singleton sets for the vertices
-        System.out.println("\nSets before Kruskal's:");
         partition = new UnionFindSets(V);
-        partition.showSets();
-        System.out.println();
+        if (sink == null) {
+            System.out.println("\nSets before Kruskal's:");
+            partition.showSets();
+            System.out.println();
+        }
 
         while (i < V-1) {
             
@@ -287,9 +310,15 @@ class Graph
             // if the vertices are of different sets, join them
             if(uSet != vSet){
                 partition.unionByRank(uSet, vSet);
+                mst[i++] = e;
+
+                if (sink != null) {
+                    sink.onTreeEdge(e.u, e.v, e.wgt);
+                    continue;
+                }
+
                 System.out.print("Inserting edge to MST: ");
                 e.show();
-                mst[i++] = e;
                 partition.showSets();
                 System.out.println("Tree of vertices:");
                 partition.showTrees();
@@ -298,8 +327,10 @@ class Graph
             
         }
         
-        System.out.println("Sets after Kruskal's:");
-        partition.showSets();
+        if (sink == null) {
+            System.out.println("Sets after Kruskal's:");
+            partition.showSets();
+        }
 
         // System.out.println("\nTree of vertices:");
         // partition.showTrees();
@@ -316,7 +347,7 @@ class Graph
 
     public void showMST()
     {
-        int sum = 0;
+        long sum = 0;
         System.out.print("\nMinimum spanning tree build from following edges:\n");
         for(int e = 0; e < V-1; ++e) {
             mst[e].show(); 
@@ -328,6 +359,192 @@ class Graph
        
     }
 
+    // Passes every MST edge to sink, for an MST restored from a snapshot
+    public void writeMST(MSTSink sink) throws IOException
+    {
+        for (int e = 0; e < V-1; ++e)
+            sink.onTreeEdge(mst[e].u, mst[e].v, mst[e].wgt);
+    }
+
+    // Saves the edges and the MST so a restart can use fromSnapshot().
+    // A snapshot that cannot be written is reported and otherwise ignored.
+    public void saveSnapshot(String graphFile)
+    {
+        int[][] cols = new int[7][];
+        int i;
+
+        cols[0] = new int[] { V, E };
+        for (i = 1; i <= 6; ++i)
+            cols[i] = new int[i <= 3 ? E : V-1];
+
+        for (i = 0; i < E; ++i) {
+            cols[1][i] = edge[i+1].u;
+            cols[2][i] = edge[i+1].v;
+            cols[3][i] = edge[i+1].wgt;
+        }
+        for (i = 0; i < V-1; ++i) {
+            cols[4][i] = mst[i].u;
+            cols[5][i] = mst[i].v;
+            cols[6][i] = mst[i].wgt;
+        }
+
+        try {
+            GraphSnapshot.write(graphFile, "kruskal", srcSize, srcTime, cols);
+            System.out.println("Saved snapshot " + GraphSnapshot.fileFor(graphFile, "kruskal"));
+        }
+        catch (IOException ex) {
+            System.out.println("Could not save snapshot " + GraphSnapshot.fileFor(graphFile, "kruskal") + ": " + ex);
+        }
+    }
+
+    // Rebuilds the graph and its MST from the snapshot of graphFile.
+    // Returns null if there is no snapshot or the graph file has changed.
+    public static Graph fromSnapshot(String graphFile)
+    {
+        File src = new File(graphFile);
+        long size = src.length(), time = src.lastModified();
+        int[][] cols = GraphSnapshot.read(graphFile, "kruskal");
+        Graph g;
+        int i;
+
+        if (cols == null || cols.length != 7 || !validSnapshot(cols)) {
+            if (cols != null)
+                System.out.println("Snapshot " + GraphSnapshot.fileFor(graphFile, "kruskal") + " does not match its graph, reloading");
+            return null;
+        }
+
+        g = new Graph();
+        g.srcSize = size;
+        g.srcTime = time;
+        g.V = cols[0][0];
+        g.E = cols[0][1];
+
+        g.edge = new Edge[g.E+1];
+        for (i = 0; i < g.E; ++i)
+            g.edge[i+1] = new Edge(cols[1][i], cols[2][i], cols[3][i]);
+
+        g.mst = new Edge[g.V-1];
+        for (i = 0; i < g.V-1; ++i)
+            g.mst[i] = new Edge(cols[4][i], cols[5][i], cols[6][i]);
+
+        System.out.println("Loaded graph and MST from snapshot " + GraphSnapshot.fileFor(graphFile, "kruskal"));
+        return g;
+    }
+
+    // True when the snapshot columns hold E edges and V-1 MST edges
+    // with every endpoint in 1..V, so fromSnapshot() can use them as they are
+    private static boolean validSnapshot(int[][] cols)
+    {
+        int V, E, i;
+
+        if (cols[0].length != 2)
+            return false;
+        V = cols[0][0];
+        E = cols[0][1];
+        if (V < 1 || E < 0)
+            return false;
+
+        for (i = 1; i <= 6; ++i)
+            if (cols[i].length != (i <= 3 ? E : V-1))
+                return false;
+
+        for (int c : new int[] { 1, 2, 4, 5 })
+            for (int x : cols[c])
+                if (x < 1 || x > V)
+                    return false;
+        return true;
+    }
+
+    // Checks the MST against every edge of the graph with MSTVerifier,
+    // then prints how far each tree edge's weight could rise.
+    // Returns false if the MST is not a minimum spanning tree of the graph.
+    public boolean verifyMST()
+    {
+        int i, v, u, k, head, tail;
+        int[] eu, ev, ew, parent, pw, first, next, queue, slack, bad, unknown;
+
+        // tree adjacency, two half-edges per MST edge, in linked index arrays
+        first = new int[V+1];
+        next = new int[2*(V-1)];
+        for (i = 0; i < V-1; ++i) {
+            next[2*i] = first[mst[i].u];
+            first[mst[i].u] = 2*i + 1;
+            next[2*i+1] = first[mst[i].v];
+            first[mst[i].v] = 2*i + 2;
+        }
+
+        // root each tree at its lowest vertex and BF down to fill parent[]
+        parent = new int[V+1];
+        pw = new int[V+1];
+        queue = new int[V];
+        boolean[] seen = new boolean[V+1];
+        head = tail = 0;
+        for (v = 1; v <= V; ++v) {
+            if (seen[v])
+                continue;
+            seen[v] = true;
+            queue[tail++] = v;
+            while (head < tail) {
+                u = queue[head++];
+                for (k = first[u]; k != 0; k = next[k-1]) {
+                    Edge e = mst[(k-1) / 2];
+                    int w = e.u == u ? e.v : e.u;
+                    if (!seen[w]) {
+                        seen[w] = true;
+                        parent[w] = u;
+                        pw[w] = e.wgt;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+
+        // edge columns, edge[] itself starts at 1
+        eu = new int[E];
+        ev = new int[E];
+        ew = new int[E];
+        for (i = 0; i < E; ++i) {
+            eu[i] = edge[i+1].u;
+            ev[i] = edge[i+1].v;
+            ew[i] = edge[i+1].wgt;
+        }
+
+        MSTVerifier check = new MSTVerifier(V, parent, pw);
+        System.out.println("\nVerifying MST against " + E + " edges:");
+
+        // an MST edge closing a cycle is left out of parent[],
+        // which then splits into more than one tree
+        if (check.trees() != 1) {
+            System.out.println("MST is not a spanning tree, its edges form " + check.trees() + " trees");
+            return false;
+        }
+
+        unknown = check.unknownTreeEdges(eu, ev, ew, E);
+        for (i = 0; i < unknown.length; ++i)
+            System.out.println("Edge " + toChar(parent[unknown[i]]) + "--" + pw[unknown[i]] + "--" + toChar(unknown[i])
+                + " is not an edge of the graph");
+        if (unknown.length != 0)
+            return false;
+
+        bad = check.violations(eu, ev, ew, E);
+        for (i = 0; i < bad.length; ++i)
+            edge[bad[i]+1].show();
+        if (bad.length != 0) {
+            System.out.println(bad.length + " edges above are lighter than the tree path they span");
+            return false;
+        }
+        System.out.println("MST verified, no edge is lighter than the tree path it spans");
+
+        slack = check.slack(eu, ev, ew, E);
+        System.out.println("\nWeight each MST edge can gain before the MST changes:");
+        for (v = 1; v <= V; ++v)
+            if (parent[v] != 0)
+                System.out.println("Edge " + toChar(parent[v]) + "--" + pw[v] + "--" + toChar(v) + "  +"
+                    + (slack[v] == Integer.MAX_VALUE ? "any (bridge)" : String.valueOf(slack[v])));
+        System.out.println();
+        return true;
+    }
+
 } // end of Graph class
     
 // Driver code
@@ -335,20 +552,49 @@ class Kruskal {
     public static void main(String[] args) throws IOException
     {
         Scanner sc = new Scanner(System. in );
-        String fname;
+        String fname, outName;
+        MSTWriter out = null;
+        int verify;
 
         System.out.println("\n\nGraph traversal and Prim's Algorithm\n");
 
         System.out.print("\nEnter .txt filename: ");
         fname = sc.nextLine();
+
+        System.out.print("\nEnter file to write MST edges to, .bin for binary (blank for none): ");
+        outName = sc.hasNextLine() ? sc.nextLine().trim() : "";
+
+        // costs about as much as Kruskal's itself, so only when asked for
+        System.out.print("\nVerify the MST against every edge (0 = no, 1 = yes): ");
+        verify = sc.hasNextInt() ? sc.nextInt() : 0;
         
         sc.close(); // Closing Scanner after use
+
+        // edges are written as Kruskal's accepts them
+        if (!outName.isEmpty())
+            out = new MSTWriter(outName, outName.endsWith(".bin"));
        
-        Graph g = new Graph(fname);
+        // reuse the last run's results while the graph file is unchanged
+        Graph g = Graph.fromSnapshot(fname);
+        if (g == null) {
+            g = new Graph(fname);
+
+            g.MST_Kruskal(out);
 
-        g.MST_Kruskal();
+            g.saveSnapshot(fname);
+        }
+        else if (out != null)
+            g.writeMST(out);
+
+        if (out != null) {
+            out.close();
+            System.out.println("\nWrote " + out.edges() + " MST edges of total weight " + out.total() + " to " + outName);
+        }
 
         g.showMST();
+
+        if (verify == 1)
+            g.verifyMST();
         
     }
 }    
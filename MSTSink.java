@@ -0,0 +1,8 @@
+import java.io.IOException;
+
+// Receives the edges of a minimum spanning tree one at a time, as soon as
+// MST_Kruskal or MST_Prim accepts them, so results can be written out
+// while the rest of the tree is still being built.
+interface MSTSink {
+    void onTreeEdge(int u, int v, int w) throws IOException;
+}
@@ -0,0 +1,243 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+//=======================================================
+//
+//   MST verification using max-weight-on-path queries
+//
+//=======================================================
+
+// Checks a spanning tree against the cycle property: a tree is minimum
+// exactly when no other edge u--v is lighter than the heaviest tree edge
+// on the path from u to v. Paths are answered by binary lifting, so the
+// check takes O((V + E) log V) instead of recomputing the MST.
+//
+// The tree is given as a parent array, as MST_Prim produces:
+//   parent[v] = parent of v, 0 if v is a root
+//   pw[v]     = weight of the tree edge v--parent[v]
+// Vertices are numbered 1..V and the edges are passed as columns eu, ev, ew.
+class MSTVerifier {
+    private int V, LOG;
+    private int[] parent, pw;
+    private int[] depth;    // depth[v] = number of edges from v up to its root
+    private int[] root;     // root[v] = root of the tree holding v
+    private int[][] up;     // up[k][v] = ancestor of v 2^k levels up
+    private int[][] upMax;  // upMax[k][v] = heaviest edge on that path
+    private int reached;    // vertices linked to a root by the parent array
+
+    public MSTVerifier(int _V, int[] _parent, int[] _pw) {
+        int v, u, k, head, tail;
+        int[] first, child, queue;
+
+        V = _V;
+        parent = _parent;
+        pw = _pw;
+
+        LOG = 1;
+        while ((1 << LOG) <= V)
+            ++LOG;
+
+        depth = new int[V + 1];
+        root = new int[V + 1];
+        up = new int[LOG][V + 1];
+        upMax = new int[LOG][V + 1];
+
+        // children of each vertex as linked index arrays
+        first = new int[V + 1];
+        child = new int[V + 1];
+        for (v = 1; v <= V; ++v) {
+            child[v] = first[parent[v]];
+            first[parent[v]] = v;
+        }
+
+        // BF down from every root so parents are placed before children
+        queue = new int[V];
+        head = tail = 0;
+        for (v = first[0]; v != 0; v = child[v]) {
+            queue[tail++] = v;
+            root[v] = v;
+            up[0][v] = v;
+            upMax[0][v] = Integer.MIN_VALUE;
+        }
+        while (head < tail) {
+            v = queue[head++];
+            for (u = first[v]; u != 0; u = child[u]) {
+                queue[tail++] = u;
+                depth[u] = depth[v] + 1;
+                root[u] = root[v];
+                up[0][u] = v;
+                upMax[0][u] = pw[u];
+            }
+        }
+        reached = tail;
+
+        for (k = 1; k < LOG; ++k)
+            for (v = 1; v <= V; ++v) {
+                u = up[k - 1][v];
+                up[k][v] = up[k - 1][u];
+                upMax[k][v] = Math.max(upMax[k - 1][v], upMax[k - 1][u]);
+            }
+    }
+
+    // true when every vertex hangs off exactly one root, i.e. no cycles
+    public boolean isForest() {
+        return reached == V;
+    }
+
+    // number of separate trees, 1 for a spanning tree of a connected graph
+    public int trees() {
+        int n = 0;
+        for (int v = 1; v <= V; ++v)
+            if (parent[v] == 0)
+                ++n;
+        return n;
+    }
+
+    // Vertices v whose tree edge v--parent[v] with weight pw[v] is not an
+    // edge of the graph, in increasing order. The tree weights are only
+    // trusted by violations() and slack() once this is empty.
+    public int[] unknownTreeEdges(int[] eu, int[] ev, int[] ew, int m) {
+        boolean[] found = new boolean[V + 1];
+
+        for (int i = 0; i < m; ++i) {
+            if (parent[eu[i]] == ev[i] && pw[eu[i]] == ew[i])
+                found[eu[i]] = true;
+            if (parent[ev[i]] == eu[i] && pw[ev[i]] == ew[i])
+                found[ev[i]] = true;
+        }
+
+        return IntStream.rangeClosed(1, V)
+                .filter(v -> parent[v] != 0 && !found[v])
+                .toArray();
+    }
+
+    // lowest common ancestor of u and v, which must share a root
+    public int lca(int u, int v) {
+        int k, t;
+
+        if (depth[u] < depth[v]) {
+            t = u;
+            u = v;
+            v = t;
+        }
+        for (k = 0, t = depth[u] - depth[v]; t != 0; ++k, t >>= 1)
+            if ((t & 1) != 0)
+                u = up[k][u];
+
+        if (u == v)
+            return u;
+
+        for (k = LOG - 1; k >= 0; --k)
+            if (up[k][u] != up[k][v]) {
+                u = up[k][u];
+                v = up[k][v];
+            }
+        return up[0][u];
+    }
+
+    // heaviest tree edge on the path u..v, Integer.MIN_VALUE when u == v
+    public int pathMax(int u, int v) {
+        int k, t, best = Integer.MIN_VALUE;
+
+        if (depth[u] < depth[v]) {
+            t = u;
+            u = v;
+            v = t;
+        }
+        for (k = 0, t = depth[u] - depth[v]; t != 0; ++k, t >>= 1)
+            if ((t & 1) != 0) {
+                best = Math.max(best, upMax[k][u]);
+                u = up[k][u];
+            }
+
+        if (u == v)
+            return best;
+
+        for (k = LOG - 1; k >= 0; --k)
+            if (up[k][u] != up[k][v]) {
+                best = Math.max(best, Math.max(upMax[k][u], upMax[k][v]));
+                u = up[k][u];
+                v = up[k][v];
+            }
+        return Math.max(best, Math.max(upMax[0][u], upMax[0][v]));
+    }
+
+    // Returns the indices of the edges that break the cycle property,
+    // in increasing order. An edge joining two separate trees also counts,
+    // since the forest could then be extended. Edges are checked in parallel.
+    public int[] violations(int[] eu, int[] ev, int[] ew, int m) {
+        return IntStream.range(0, m).parallel()
+                .filter(i -> root[eu[i]] != root[ev[i]] || pathMax(eu[i], ev[i]) > ew[i])
+                .toArray();
+    }
+
+    // Sensitivity of each tree edge: slack[v] is how much the weight of
+    // v--parent[v] can rise before some other edge could replace it.
+    // It is the lightest non-tree edge whose tree path covers v--parent[v],
+    // less pw[v], or Integer.MAX_VALUE when no edge covers it (a bridge).
+    //
+    // Non-tree edges are taken lightest first and each one marks the still
+    // uncovered tree edges on its path. A union-find jump[] skips edges
+    // already marked, so each tree edge is visited once.
+    public int[] slack(int[] eu, int[] ev, int[] ew, int m) {
+        int i, v, top, n = 0;
+        int[] slack = new int[V + 1];
+        int[] jump = new int[V + 1];
+        boolean[] matched = new boolean[V + 1];
+        long[] keys = new long[m];
+
+        // leave out one copy of each tree edge
+        for (i = 0; i < m; ++i) {
+            if (isTreeEdge(eu[i], ev[i], ew[i], matched) || isTreeEdge(ev[i], eu[i], ew[i], matched))
+                continue;
+            keys[n++] = ((long) ew[i] << 32) | i;
+        }
+        Arrays.parallelSort(keys, 0, n);
+
+        for (v = 1; v <= V; ++v) {
+            slack[v] = Integer.MAX_VALUE;
+            jump[v] = v;
+        }
+
+        for (int k = 0; k < n; ++k) {
+            i = (int) keys[k];
+            if (root[eu[i]] != root[ev[i]])
+                continue;
+
+            top = lca(eu[i], ev[i]);
+            cover(eu[i], top, ew[i], jump, slack);
+            cover(ev[i], top, ew[i], jump, slack);
+        }
+        return slack;
+    }
+
+    // marks the uncovered tree edges from v up to its ancestor top
+    private void cover(int v, int top, int w, int[] jump, int[] slack) {
+        for (v = find(jump, v); depth[v] > depth[top]; v = find(jump, v)) {
+            slack[v] = (int) Math.min(Integer.MAX_VALUE - 1, (long) w - pw[v]);
+            jump[v] = parent[v];
+        }
+    }
+
+    // matches u--v to the tree edge u--parent[u] the first time it is seen
+    private boolean isTreeEdge(int u, int v, int w, boolean[] matched) {
+        if (parent[u] != v || pw[u] != w || matched[u])
+            return false;
+        matched[u] = true;
+        return true;
+    }
+
+    // highest ancestor of v reachable through covered tree edges
+    private int find(int[] jump, int v) {
+        int r = v, t;
+        while (jump[r] != r)
+            r = jump[r];
+        while (jump[v] != r) {
+            t = jump[v];
+            jump[v] = r;
+            v = t;
+        }
+        return r;
+    }
+
+} // End of class MSTVerifier
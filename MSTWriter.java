@@ -0,0 +1,103 @@
+import java.io.*;
+
+//=======================================================
+//
+//        Buffered writer of MST edges as they arrive
+//
+//=======================================================
+
+// Writes each tree edge to a stream, either as text lines "u v w" or as
+// three big-endian ints, and keeps the edge count and total weight.
+// Edges are formatted straight into a byte buffer, so no String or
+// other object is created per edge.
+class MSTWriter implements MSTSink, Closeable {
+    private OutputStream out;
+    private byte[] buf;     // pending output
+    private int n;          // bytes used in buf
+    private boolean binary;
+    private long total;     // sum of weights, long so large trees cannot overflow
+    private int edges;
+
+    public MSTWriter(OutputStream _out, boolean _binary) {
+        out = _out;
+        binary = _binary;
+        buf = new byte[1 << 16];
+    }
+
+    public MSTWriter(String file, boolean _binary) throws IOException {
+        this(new FileOutputStream(file), _binary);
+    }
+
+    public void onTreeEdge(int u, int v, int w) throws IOException {
+        // an edge takes at most 3 * 11 digits and signs plus separators
+        if (n + 36 > buf.length)
+            flush();
+
+        if (binary) {
+            putInt(u);
+            putInt(v);
+            putInt(w);
+        } else {
+            putDigits(u);
+            buf[n++] = ' ';
+            putDigits(v);
+            buf[n++] = ' ';
+            putDigits(w);
+            buf[n++] = '\n';
+        }
+
+        total += w;
+        ++edges;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    public int edges() {
+        return edges;
+    }
+
+    public void flush() throws IOException {
+        out.write(buf, 0, n);
+        n = 0;
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void putInt(int x) {
+        buf[n++] = (byte) (x >>> 24);
+        buf[n++] = (byte) (x >>> 16);
+        buf[n++] = (byte) (x >>> 8);
+        buf[n++] = (byte) x;
+    }
+
+    // decimal digits of x, written backwards then reversed in place
+    private void putDigits(int x) {
+        long y = x;
+        int start, end;
+        byte t;
+
+        if (y < 0) {
+            buf[n++] = '-';
+            y = -y;
+        }
+
+        start = n;
+        do {
+            buf[n++] = (byte) ('0' + y % 10);
+            y /= 10;
+        } while (y != 0);
+
+        for (end = n - 1; start < end; ++start, --end) {
+            t = buf[start];
+            buf[start] = buf[end];
+            buf[end] = t;
+        }
+    }
+
+} // End of class MSTWriter
@@ -1,32 +1,126 @@
 import java.io.*;
+import java.util.Arrays;
 import java.util.Scanner;
 
 class GraphLists {
+    // vertex orderings accepted by reorder()
+    public static final int FILE_ORDER = 0;
+    public static final int BFS_ORDER = 1;
+    public static final int RCM_ORDER = 2;
+    public static final int DEGREE_ORDER = 3;
+
     class Node {
         public int vert;
         public int wgt;
         public Node next;
     }
 
+    // Walks the neighbours of one vertex, from the lists or the packed form.
+    // This is the one place the packed form is decoded: each neighbour is
+    // the previous one plus a gap stored 7 bits per byte, low bits first,
+    // with the top bit set on every byte but the last.
+    class Cursor {
+        public int vert;    // current neighbour
+        public int wgt;     // weight of the edge to it
+        private Node t;
+        private int p, end, i;
+
+        public Cursor start(int v) {
+            vert = 0;
+            if (packed == null) {
+                t = adj[v];
+                p = end = 0;
+            } else {
+                t = z;
+                p = pOff[v];
+                end = pOff[v + 1];
+                i = wOff[v];
+            }
+            return this;
+        }
+
+        public boolean next() {
+            int shift;
+
+            if (t != z) {
+                vert = t.vert;
+                wgt = t.wgt;
+                t = t.next;
+                return true;
+            }
+            if (p >= end)
+                return false;
+
+            for (shift = 0; packed[p] < 0; shift += 7)
+                vert += (packed[p++] & 0x7f) << shift;
+            vert += packed[p++] << shift;
+            wgt = packedWgt(i++);
+            return true;
+        }
+    }
+
     // V = number of vertices
     // E = number of edges
     // adj[] is the adjacency lists array
     // mst[] holds values of parent[] from the Prim algorithm for printing
+    // mstWgt[v] is the weight of the tree edge v--mst[v]
     private int V, E;
     private Node[] adj;
     private Node z;
-    private int[] mst;
+    private int[] mst, mstWgt;
 
     // used for traversing graph
     private int[] visited;
     private int id;
 
+    // bitmasks for multi-source BF, one bit per root in a batch of 64,
+    // and the lists of vertices whose frontier[] or nextBits[] is non-zero
+    // allocated on first use and reused by every later batch
+    private long[] seen, frontier, nextBits;
+    private int[] frontierList, nextList;
+
+    // set by reorder(), null while vertices are numbered as in the file
+    // label[v] = file id of internal vertex v, place[u] = internal id of file vertex u
+    private int[] label, place;
+    private int vertexOrder = FILE_ORDER;
+
+    // file id of the root MST_Prim last started from, saved in snapshots
+    private int mstRoot;
+
+    // vertices in the order MST_Prim added them, so writeMST() can replay
+    // the edges of a restored MST in the order they were first streamed
+    private int[] mstSeq;
+
+    // size and mtime of the graph file when it was read, kept in snapshots
+    private long srcSize, srcTime;
+
+    // packed adjacency, set by pack() which then releases adj[].
+    // The neighbours of v are sorted and stored as varint gaps in
+    // packed[pOff[v] .. pOff[v+1]-1]; their weights start at wcol entry wOff[v]
+    // and are wBytes wide, the narrowest width that holds every weight.
+    private byte[] packed, wcol;
+    private int[] pOff, wOff;
+    private int wBytes;
+
+    // largest array the JVM will allocate
+    private static final int MAX_ARRAY = Integer.MAX_VALUE - 8;
+
+    // used by fromSnapshot(), which fills in the fields itself
+    private GraphLists() {
+    }
+
     // default constructor
     public GraphLists(String graphFile) throws IOException {
         int u, v;
         int e, wgt;
         Node t;
 
+        // taken before reading, so an edit made during the run is not
+        // recorded as matching the graph read here
+        File src = new File(graphFile);
+        srcSize = src.length();
+        srcTime = src.lastModified();
+
         FileReader fr = new FileReader(graphFile);
         BufferedReader reader = new BufferedReader(fr);
 
@@ -75,22 +169,37 @@ class GraphLists {
         reader.close();
     }
 
-    // converts vertex into char for pretty printing
+    // converts vertex into char for pretty printing, using its file id
     private char toChar(int u) {
-        return (char) (u + 64);
+        return (char) (external(u) + 64);
+    }
+
+    // converts a vertex id from the file into the internal id
+    private int internal(int u) {
+        return place == null ? u : place[u];
+    }
+
+    // converts an internal vertex id back into its id in the file, 0 stays 0
+    private int external(int v) {
+        return label == null ? v : label[v];
     }
 
     // method to display the graph representation
     public void display() {
-        int v;
-        Node n;
+        int v, u, wgt;
+        Cursor c = new Cursor();
 
         System.out.println("\n\nDisplaying adjacency list:");
 
-        for (v = 1; v <= V; ++v) {
+        for (int f = 1; f <= V; ++f) {
+            v = internal(f);
             System.out.print("\nadj[" + toChar(v) + "] ->");
-            for (n = adj[v]; n != z; n = n.next)
-                System.out.print(" |" + toChar(n.vert) + " | " + n.wgt + "| ->");
+
+            for (c.start(v); c.next(); ) {
+                u = c.vert;
+                wgt = c.wgt;
+                System.out.print(" |" + toChar(u) + " | " + wgt + "| ->");
+            }
         }
         System.out.println("");
     }
@@ -106,6 +215,7 @@ class GraphLists {
     public void DF(int s) {
         
         id = 0;
+        s = internal(s);
 
         // foreach vertex in V
         for (int v = 1; v <= V; v++) { 
@@ -123,15 +233,16 @@ class GraphLists {
 
     // Recursive Depth First Traversal for adjacency list
     private void dfVisit(int prev, int v) {
-        Node t;
+        Cursor c = new Cursor();
         int u;
 
         visited[v] = ++id;
         System.out.print("\n  DF just visited vertex " + toChar(v) + " along " + toChar(prev) + "--" + toChar(v));
 
-        // for each vertex in adj(v)
-        for (t = adj[v]; t != z; t = t.next) {
-            u = t.vert;
+        // for each vertex in adj(v), read from the lists or the packed bytes
+        for (c.start(v); c.next(); ) {
+            u = c.vert;
+
             if (visited[u] == 0) {
                 dfVisit(v, u);
             }
@@ -149,7 +260,9 @@ class GraphLists {
         Queue Q = new Queue();
         id = 0;
         int u, v;
-        Node t;
+        Cursor c = new Cursor();
+
+        s = internal(s);
 
         // for each vertex in V
         for (v = 1; v <= V; v++) {
@@ -169,9 +282,9 @@ class GraphLists {
                 visited[v] = ++id;
                 System.out.print("\n  BF just visited vertex " + toChar(v));
 
-                // for each vertex in adj[v]
-                for (t = adj[v]; t != z; t = t.next) {
-                    u = t.vert;
+                // for each vertex in adj[v], from the lists or the packed bytes
+                for (c.start(v); c.next(); ) {
+                    u = c.vert;
 
                     if (visited[u] == 0)
                         Q.enQueue(u);
@@ -184,21 +297,646 @@ class GraphLists {
     }// End BF()
 
 
+    //=======================================================
+    //
+    //     Bit-parallel multi-source BF (batches of 64 roots)
+    //
+    //=======================================================
+
+    // Runs a BF from every vertex in roots[] at the same time.
+    // Bit i of seen[v] is set once root i of the current batch reaches v,
+    // so one scan of adj[v] advances every root that has v on its frontier.
+    // Roots and depth[] indices are file vertex ids. On return:
+    //   reach[i] = number of vertices reachable from roots[i]
+    //   ecc[i]   = eccentricity of roots[i] within its component
+    //   depth[i][v] = BF depth of v from roots[i], -1 if unreachable
+    // depth may be null when only the aggregated values are wanted.
+    public void MS_BF(int[] roots, int[][] depth, int[] reach, int[] ecc) {
+        int base, size, i, k, v, u, level, fCount, nCount;
+        long bits, b;
+        Cursor c = new Cursor();
+
+        if (seen == null) {
+            seen = new long[V + 1];
+            frontier = new long[V + 1];
+            nextBits = new long[V + 1];
+            frontierList = new int[V];
+            nextList = new int[V];
+        }
+
+        for (base = 0; base < roots.length; base += 64) {
+            size = Math.min(64, roots.length - base);
+
+            for (v = 1; v <= V; ++v)
+                seen[v] = 0;
+
+            // each root starts at depth 0 with only itself seen
+            fCount = 0;
+            for (i = 0; i < size; ++i) {
+                v = internal(roots[base + i]);
+                if (frontier[v] == 0)
+                    frontierList[fCount++] = v;
+                seen[v] |= 1L << i;
+                frontier[v] |= 1L << i;
+                reach[base + i] = 1;
+                ecc[base + i] = 0;
+
+                if (depth != null) {
+                    Arrays.fill(depth[base + i], -1);
+                    depth[base + i][roots[base + i]] = 0;
+                }
+            }
+
+            // only vertices on the frontier are scanned, so a level costs
+            // the degrees of its frontier rather than a pass over all V
+            for (level = 1; fCount > 0; ++level) {
+
+                // push every frontier bit of v to all of its neighbours
+                nCount = 0;
+                for (k = 0; k < fCount; ++k) {
+                    v = frontierList[k];
+                    bits = frontier[v];
+                    frontier[v] = 0;
+
+                    for (c.start(v); c.next(); ) {
+                        u = c.vert;
+                        if (nextBits[u] == 0)
+                            nextList[nCount++] = u;
+                        nextBits[u] |= bits;
+                    }
+                }
+
+                // keep only roots that had not reached u before,
+                // these make up the next level's frontier
+                fCount = 0;
+                for (k = 0; k < nCount; ++k) {
+                    u = nextList[k];
+                    bits = nextBits[u] & ~seen[u];
+                    nextBits[u] = 0;
+                    if (bits == 0)
+                        continue;
+
+                    seen[u] |= bits;
+                    frontier[u] = bits;
+                    frontierList[fCount++] = u;
+
+                    for (b = bits; b != 0; b &= b - 1) {
+                        i = base + Long.numberOfTrailingZeros(b);
+                        ++reach[i];
+                        ecc[i] = level;
+                        if (depth != null)
+                            depth[i][external(u)] = level;
+                    }
+                }
+            } // end for each level
+
+        } // end for each batch
+
+    } // end MS_BF()
+
+
+    // Prints reachability and eccentricity of every vertex
+    public void showEccentricity() {
+        int[] roots = new int[V];
+        int[] reach = new int[V];
+        int[] ecc = new int[V];
+
+        for (int v = 1; v <= V; ++v)
+            roots[v - 1] = v;
+
+        MS_BF(roots, null, reach, ecc);
+
+        System.out.print("\n\nMulti-source BF, reach and eccentricity of each vertex:\n");
+        for (int i = 0; i < V; ++i)
+            System.out.println(toChar(internal(roots[i])) + ": reaches " + reach[i] + ", eccentricity " + ecc[i]);
+    }
+
+
+    //=======================================================
+    //
+    //     Vertex reordering for locality of dist[], visited[]
+    //
+    //=======================================================
+
+    // Relabels the vertices so that neighbours get nearby ids and the
+    // per-vertex arrays are walked mostly in order. Each adjacency list is
+    // rebuilt in the new order, keeping its neighbours in the same sequence,
+    // so traversals and the MST visit the same vertices as before.
+    // All input and output still uses the vertex ids from the file.
+    public void reorder(int order) {
+        int[] seq, newPlace, newLabel;
+        Node[] newAdj;
+        Node t, n, tail;
+        int v, k;
+
+        if (order == FILE_ORDER)
+            return;
+
+        if (packed != null) {
+            System.out.println("\nVertices must be reordered before the lists are packed");
+            return;
+        }
+
+        System.out.print("\n\nReordering vertices using " + orderName(order) + " order\n");
+        showLocality();
+
+        if (order == BFS_ORDER)
+            seq = bfsOrder(false);
+        else if (order == RCM_ORDER)
+            seq = bfsOrder(true);
+        else
+            seq = degreeOrder();
+
+        // newPlace[v] = new id of current vertex v
+        newPlace = new int[V + 1];
+        for (k = 0; k < V; ++k)
+            newPlace[seq[k]] = k + 1;
+
+        // rebuild lists in new id order so their nodes are allocated together
+        newAdj = new Node[V + 1];
+        for (k = 1; k <= V; ++k) {
+            v = seq[k - 1];
+            newAdj[k] = z;
+            tail = null;
+            for (t = adj[v]; t != z; t = t.next) {
+                n = new Node();
+                n.vert = newPlace[t.vert];
+                n.wgt = t.wgt;
+                n.next = z;
+                if (tail == null)
+                    newAdj[k] = n;
+                else
+                    tail.next = n;
+                tail = n;
+            }
+        }
+        adj = newAdj;
+
+        // a parent array computed before reordering is carried across
+        if (mst != null) {
+            int[] newMst = new int[V + 1];
+            int[] newWgt = new int[V + 1];
+            for (v = 1; v <= V; ++v) {
+                newMst[newPlace[v]] = mst[v] == 0 ? 0 : newPlace[mst[v]];
+                newWgt[newPlace[v]] = mstWgt[v];
+            }
+            mst = newMst;
+            mstWgt = newWgt;
+            for (k = 0; k < mstSeq.length; ++k)
+                mstSeq[k] = newPlace[mstSeq[k]];
+        }
+
+        // compose with any earlier relabelling
+        newLabel = new int[V + 1];
+        for (v = 1; v <= V; ++v)
+            newLabel[newPlace[v]] = external(v);
+        label = newLabel;
+
+        place = new int[V + 1];
+        for (v = 1; v <= V; ++v)
+            place[label[v]] = v;
+
+        vertexOrder = order;
+        showLocality();
+    }
+
+    private String orderName(int order) {
+        switch (order) {
+            case BFS_ORDER:    return "BFS";
+            case RCM_ORDER:    return "reverse Cuthill-McKee";
+            case DEGREE_ORDER: return "degree";
+            default:           return "file";
+        }
+    }
+
+    // Number of neighbours of every vertex
+    private int[] degrees() {
+        int[] deg = new int[V + 1];
+        Cursor c = new Cursor();
+        for (int v = 1; v <= V; ++v)
+            for (c.start(v); c.next(); )
+                ++deg[v];
+        return deg;
+    }
+
+    // Vertices in BF order, one component after another.
+    // For Cuthill-McKee each component starts at a vertex of minimum degree,
+    // newly found neighbours are queued by increasing degree, and the
+    // final sequence is reversed.
+    private int[] bfsOrder(boolean rcm) {
+        int[] seq = new int[V];
+        int[] deg = degrees();
+        long[] keys = new long[V];
+        boolean[] queued = new boolean[V + 1];
+        int[] starts = new int[V];
+        int head = 0, tail = 0;
+        int r, v, u, k, found;
+        Cursor c = new Cursor();
+
+        // candidate start vertices in id order, or for Cuthill-McKee by
+        // increasing degree, so the next unplaced one is found by moving
+        // a single pointer forward
+        for (v = 1; v <= V; ++v)
+            keys[v - 1] = ((long) (rcm ? deg[v] : 0) << 32) | v;
+        Arrays.sort(keys);
+        for (k = 0; k < V; ++k)
+            starts[k] = (int) keys[k];
+
+        for (r = 0; r < V; ++r) {
+            v = starts[r];
+            if (queued[v])
+                continue;
+
+            seq[tail++] = v;
+            queued[v] = true;
+
+            // seq[] itself is the queue
+            while (head < tail) {
+                v = seq[head++];
+                found = 0;
+                for (c.start(v); c.next(); ) {
+                    u = c.vert;
+                    if (!queued[u]) {
+                        queued[u] = true;
+                        keys[found++] = ((long) deg[u] << 32) | u;
+                    }
+                }
+
+                if (rcm)
+                    Arrays.sort(keys, 0, found);
+                for (k = 0; k < found; ++k)
+                    seq[tail++] = (int) keys[k];
+            }
+        }
+
+        if (rcm)
+            for (k = 0; k < V / 2; ++k) {
+                v = seq[k];
+                seq[k] = seq[V - 1 - k];
+                seq[V - 1 - k] = v;
+            }
+
+        return seq;
+    }
+
+    // Vertices by decreasing degree, ties kept in id order
+    private int[] degreeOrder() {
+        int[] seq = new int[V];
+        int[] deg = degrees();
+        long[] keys = new long[V];
+
+        for (int v = 1; v <= V; ++v)
+            keys[v - 1] = ((long) (Integer.MAX_VALUE - deg[v]) << 32) | v;
+        Arrays.sort(keys);
+
+        for (int k = 0; k < V; ++k)
+            seq[k] = (int) keys[k];
+        return seq;
+    }
+
+    // Prints how far apart neighbouring vertex ids are, in O(E),
+    // from the lists or the packed form
+    public void showLocality() {
+        long gap = 0, halfEdges = 0;
+        int bandwidth = 0, d;
+        Cursor c = new Cursor();
+
+        for (int v = 1; v <= V; ++v)
+            for (c.start(v); c.next(); ) {
+                d = Math.abs(v - c.vert);
+                bandwidth = Math.max(bandwidth, d);
+                gap += d;
+                ++halfEdges;
+            }
+
+        System.out.println("  bandwidth = " + bandwidth
+                + ", mean neighbour gap = " + (halfEdges == 0 ? 0 : (double) gap / halfEdges));
+    }
+
+    // Times the same multi-source BF on the file order and on the given
+    // order. Both layouts are loaded side by side and warmed up first, then
+    // timed in alternating rounds so neither gets the cold JIT or cache.
+    public static void benchmarkOrder(String graphFile, int order, int rounds) throws IOException {
+        GraphLists[] g = { new GraphLists(graphFile), new GraphLists(graphFile) };
+        long[] best = { Long.MAX_VALUE, Long.MAX_VALUE };
+        long[] total = new long[2];
+        long start, time;
+        int n, r, k;
+
+        g[1].reorder(order);
+
+        // up to 256 roots spread over the file ids, the same for both layouts
+        n = Math.min(g[0].V, 256);
+        int[] roots = new int[n];
+        int[] reach = new int[n];
+        int[] ecc = new int[n];
+        for (k = 0; k < n; ++k)
+            roots[k] = 1 + (int) ((long) k * g[0].V / n);
+
+        for (r = -2; r < rounds; ++r)
+            for (k = 0; k < 2; ++k) {
+                start = System.nanoTime();
+                g[k].MS_BF(roots, null, reach, ecc);
+                time = System.nanoTime() - start;
+
+                // the first two rounds are warm-up only
+                if (r >= 0) {
+                    best[k] = Math.min(best[k], time);
+                    total[k] += time;
+                }
+            }
+
+        System.out.println("\nMulti-source BF from " + n + " roots, " + rounds + " rounds each:");
+        for (k = 0; k < 2; ++k)
+            System.out.println("  " + g[k].orderName(k == 0 ? FILE_ORDER : order) + " order: best "
+                    + best[k] / 1000 + " us, mean " + total[k] / Math.max(rounds, 1) / 1000 + " us");
+    }
+
+
+    //=======================================================
+    //
+    //      Packed adjacency: sorted gaps as varints
+    //
+    //=======================================================
+
+    // Replaces the linked adjacency lists with the packed byte form.
+    // Each neighbour list is sorted so the gaps between ids are small,
+    // and each gap is written 7 bits per byte with the top bit set on
+    // every byte but the last (see Cursor). Prints the space used and how
+    // fast a full sweep decodes compared with walking the lists.
+    // While it runs the lists and the packed form are both in memory;
+    // readPacked() builds the same form without the lists.
+    public void pack() {
+        int v, deg, minW = 0, maxW = 0;
+        long halfEdges = 0;
+        int[] off;
+        long[] keys;
+        Node t;
+
+        if (packed != null)
+            return;
+
+        off = new int[V + 2];
+        for (v = 1; v <= V; ++v) {
+            deg = 0;
+            for (t = adj[v]; t != z; t = t.next) {
+                minW = Math.min(minW, t.wgt);
+                maxW = Math.max(maxW, t.wgt);
+                ++deg;
+            }
+            halfEdges += deg;
+            if (halfEdges > MAX_ARRAY) {
+                System.out.println("\nToo many edges to pack, keeping the lists");
+                return;
+            }
+            off[v + 1] = (int) halfEdges;
+        }
+
+        keys = new long[(int) halfEdges];
+        for (v = 1; v <= V; ++v) {
+            deg = off[v];
+            for (t = adj[v]; t != z; t = t.next)
+                keys[deg++] = ((long) t.vert << 32) | (t.wgt & 0xffffffffL);
+        }
+
+        if (!encode(keys, off, minW, maxW)) {
+            System.out.println("\nPacked form would not fit in single arrays, keeping the lists");
+            return;
+        }
+        showPackedStats(halfEdges);
+        adj = null;
+    }
+
+    // Reads graphFile straight into the packed form, without building the
+    // lists. The file is read twice: first to count each vertex's degree,
+    // then to drop every half-edge into its vertex's slot of one long[],
+    // 8 bytes a half-edge against about 24 for a Node. Vertices keep their
+    // file ids. Returns null, having said why, if the graph is too large.
+    //
+    // Limits: every column is a single Java array, so a graph can have at
+    // most MAX_ARRAY half-edges, about 1.07e9 edges, and fewer when the
+    // gaps or weights need more than a byte. Billion-edge graphs are not
+    // supported; that would need each column split across several arrays.
+    public static GraphLists readPacked(String graphFile) throws IOException {
+        GraphLists g = new GraphLists();
+        int[] off, fill;
+        long[] keys;
+        int u, v, e, wgt, minW = 0, maxW = 0;
+        String line;
+        String[] parts;
+        String splits = " +";   // multiple whitespace as delimiter
+
+        // taken before reading, as in the constructor
+        File src = new File(graphFile);
+        g.srcSize = src.length();
+        g.srcTime = src.lastModified();
+
+        // first pass, degrees and weight range
+        BufferedReader reader = new BufferedReader(new FileReader(graphFile));
+        parts = reader.readLine().split(splits);
+        System.out.println("\nParts[] = " + parts[0] + " " + parts[1]);
+        g.V = Integer.parseInt(parts[0]);
+        g.E = Integer.parseInt(parts[1]);
+
+        if (2L * g.E > MAX_ARRAY) {
+            reader.close();
+            System.out.println("\nToo many edges to pack: " + g.E);
+            return null;
+        }
+
+        off = new int[g.V + 2];
+        for (e = 1; e <= g.E; ++e) {
+            parts = reader.readLine().split(splits);
+            ++off[Integer.parseInt(parts[0]) + 1];
+            ++off[Integer.parseInt(parts[1]) + 1];
+            wgt = Integer.parseInt(parts[2]);
+            minW = Math.min(minW, wgt);
+            maxW = Math.max(maxW, wgt);
+        }
+        reader.close();
+
+        // off[v] = where v's half-edges start
+        for (v = 1; v <= g.V; ++v)
+            off[v + 1] += off[v];
+
+        // second pass, each half-edge into its slot
+        keys = new long[2 * g.E];
+        fill = Arrays.copyOf(off, g.V + 1);
+        reader = new BufferedReader(new FileReader(graphFile));
+        reader.readLine();
+        System.out.println("Reading edges from text file:\n");
+        for (e = 1; e <= g.E; ++e) {
+            line = reader.readLine();
+            parts = line.split(splits);
+            u = Integer.parseInt(parts[0]);
+            v = Integer.parseInt(parts[1]);
+            wgt = Integer.parseInt(parts[2]);
+
+            System.out.println("Edge " + g.toChar(u) + "--(" + wgt + ")--" + g.toChar(v));
+
+            keys[fill[u]++] = ((long) v << 32) | (wgt & 0xffffffffL);
+            keys[fill[v]++] = ((long) u << 32) | (wgt & 0xffffffffL);
+        }
+        reader.close();
+        fill = null;
+
+        g.z = g.new Node();
+        g.z.next = g.z;
+        g.visited = new int[g.V + 1];
+
+        if (!g.encode(keys, off, minW, maxW)) {
+            System.out.println("\nPacked form would not fit in single arrays");
+            return null;
+        }
+        g.showPackedStats(2L * g.E);
+        return g;
+    }
+
+    // Sorts the half-edges of each vertex v, held in keys[off[v] .. off[v+1]-1]
+    // as neighbour << 32 | weight, and encodes them into packed[] and wcol[].
+    // off[] becomes wOff[]. Returns false, leaving the fields unset, if the
+    // gaps or weights would not fit in one array.
+    private boolean encode(long[] keys, int[] off, int minW, int maxW) {
+        int v, u, j, gap, prev, bytes;
+        long total = 0;
+        int[] bOff = new int[V + 2];
+        byte[] gaps, weights;
+
+        if (minW >= 0 && maxW <= 0xff)
+            wBytes = 1;
+        else if (minW >= Short.MIN_VALUE && maxW <= Short.MAX_VALUE)
+            wBytes = 2;
+        else
+            wBytes = 4;
+        if ((long) keys.length * wBytes > MAX_ARRAY)
+            return false;
+
+        // sort by neighbour, then by weight, and size each vertex's gaps
+        for (v = 1; v <= V; ++v) {
+            Arrays.sort(keys, off[v], off[v + 1]);
+            bOff[v] = (int) total;
+
+            prev = 0;
+            for (j = off[v]; j < off[v + 1]; ++j) {
+                u = (int) (keys[j] >>> 32);
+                for (gap = u - prev, bytes = 1; gap >= 0x80; gap >>>= 7)
+                    ++bytes;
+                prev = u;
+                total += bytes;
+            }
+            if (total > MAX_ARRAY)
+                return false;
+        }
+        bOff[V + 1] = (int) total;
+
+        gaps = new byte[(int) total];
+        weights = new byte[keys.length * wBytes];
+        for (v = 1; v <= V; ++v) {
+            bytes = bOff[v];
+            prev = 0;
+            for (j = off[v]; j < off[v + 1]; ++j) {
+                u = (int) (keys[j] >>> 32);
+                gap = u - prev;
+                prev = u;
+
+                while (gap >= 0x80) {
+                    gaps[bytes++] = (byte) (gap | 0x80);
+                    gap >>>= 7;
+                }
+                gaps[bytes++] = (byte) gap;
+
+                for (int b = 0; b < wBytes; ++b)
+                    weights[j * wBytes + b] = (byte) ((int) keys[j] >> (8 * b));
+            }
+        }
+
+        packed = gaps;
+        wcol = weights;
+        pOff = bOff;
+        wOff = off;
+        return true;
+    }
+
+    // weight of the i-th half-edge in the packed form
+    private int packedWgt(int i) {
+        switch (wBytes) {
+            case 1:
+                return wcol[i] & 0xff;
+            case 2:
+                return (wcol[2 * i] & 0xff) | (wcol[2 * i + 1] << 8);
+            default:
+                i *= 4;
+                return (wcol[i] & 0xff) | (wcol[i + 1] & 0xff) << 8
+                        | (wcol[i + 2] & 0xff) << 16 | wcol[i + 3] << 24;
+        }
+    }
+
+    // Space per half-edge and decode speed of both layouts, or of the
+    // packed form alone when it was read without lists.
+    // A list Node is counted as 24 bytes, its usual size with compressed oops.
+    private void showPackedStats(long halfEdges) {
+        long listTime = Long.MAX_VALUE, packedTime = Long.MAX_VALUE;
+        long start, sum = 0;
+        Cursor c = new Cursor();
+        int v;
+        Node t;
+
+        // best of a few sweeps so the first, unoptimised one is not counted
+        for (int rep = 0; rep < 5; ++rep) {
+            if (adj != null) {
+                start = System.nanoTime();
+                for (v = 1; v <= V; ++v)
+                    for (t = adj[v]; t != z; t = t.next)
+                        sum += t.vert + t.wgt;
+                listTime = Math.min(listTime, System.nanoTime() - start);
+            }
+
+            start = System.nanoTime();
+            for (v = 1; v <= V; ++v)
+                for (c.start(v); c.next(); )
+                    sum -= c.vert + c.wgt;
+            packedTime = Math.min(packedTime, System.nanoTime() - start);
+        }
+
+        if (adj != null && sum != 0)
+            System.out.println("\nPacked adjacency does not match the lists");
+
+        halfEdges = Math.max(halfEdges, 1);
+        System.out.println("\nPacked adjacency lists:");
+        System.out.println("  neighbours " + (8.0 * packed.length / halfEdges) + " bits/half-edge, weights "
+                + 8 * wBytes + " bits/half-edge, offsets " + (8.0 * 8 * (V + 2) / halfEdges) + " bits/half-edge");
+        System.out.println("  linked lists " + 8 * 24 + " bits/half-edge");
+        System.out.println("  decode " + (1000.0 * halfEdges / Math.max(packedTime, 1)) + " M half-edges/s packed"
+                + (adj == null ? "" : ", " + (1000.0 * halfEdges / Math.max(listTime, 1)) + " M half-edges/s from lists"));
+    }
+
+
     //=======================================================
     //
     //        Heap implementation of Prim's algorithm
     //
     //=======================================================
-    public void MST_Prim(int s) {
+    public void MST_Prim(int s) throws IOException {
+        MST_Prim(s, null);
+    }
+
+    // As above, but also passes each edge to sink, in file ids, the moment
+    // it joins the MST. With a sink the edges are not printed.
+    public void MST_Prim(int s, MSTSink sink) throws IOException {
         int v, u;
-        int wgt, wgt_sum = 0;
-        int[] dist, parent, hPos;
-        Node t;
+        int wgt, added = 0;
+        long wgt_sum = 0;
+        int[] dist, parent, hPos, seq;
+        Cursor c = new Cursor();
+
+        mstRoot = s;
+        s = internal(s);
 
         // Initialising arrays
         dist = new int[V + 1];      // the distance from starting vertex
         parent = new int[V + 1];    // array to hold parent of vertex
         hPos = new int[V + 1];      // heap Position
+        seq = new int[V];           // vertices in the order they are added
 
         // for each vertex in V
         for (v = 0; v <= V; ++v) 
@@ -217,16 +955,20 @@ class GraphLists {
         {
             v = h.remove();     // add v to the MST
             dist[v] = -dist[v]; // mark v as now in the MST
+            seq[added++] = v;
 
             wgt_sum -= dist[v]; // add the wgt of v to sum
             
-            System.out.println("Adding to MST: Edge " + toChar(parent[v]) + "--(" + -dist[v] + ")--" + toChar(v));
+            if (sink == null)
+                System.out.println("Adding to MST: Edge " + toChar(parent[v]) + "--(" + -dist[v] + ")--" + toChar(v));
+            else if (parent[v] != 0)
+                sink.onTreeEdge(external(parent[v]), external(v), -dist[v]);
 
-            // for each neighbour of v
-            for (t = adj[v]; t != z; t = t.next) 
+            // for each neighbour of v, from the lists or the packed bytes
+            for (c.start(v); c.next(); )
             {
-                u = t.vert;
-                wgt = t.wgt;
+                u = c.vert;
+                wgt = c.wgt;
 
                 // if new weight less than current weight
                 if (wgt < dist[u]) 
@@ -251,6 +993,12 @@ class GraphLists {
 
         System.out.print("\n\nWeight of MST = " + wgt_sum + "\n");
         mst = parent;
+        mstSeq = Arrays.copyOf(seq, added);
+
+        // dist[v] was negated as v joined the MST
+        mstWgt = dist;
+        for (v = 1; v <= V; ++v)
+            mstWgt[v] = parent[v] == 0 ? 0 : -dist[v];
 
     } // end MST_Prim()
 
@@ -259,19 +1007,314 @@ class GraphLists {
     public void showMST()
     {
         System.out.print("\n\nMinimum Spanning tree parent array is:\n");
-        for (int v = 1; v <= V; ++v)
+        for (int f = 1; f <= V; ++f) {
+            int v = internal(f);
             System.out.println(toChar(v) + " -> " + toChar(mst[v]));
+        }
         System.out.println("");
     }
 
+
+    //=======================================================
+    //
+    //       Snapshot of the graph and MST for restarts
+    //
+    //=======================================================
+
+    // Passes every MST edge to sink in file ids, for an MST restored from a
+    // snapshot. The edges come in the order MST_Prim added them, so the
+    // output matches the run that saved the snapshot.
+    public void writeMST(MSTSink sink) throws IOException {
+        for (int v : mstSeq)
+            if (mst[v] != 0)
+                sink.onTreeEdge(external(mst[v]), external(v), mstWgt[v]);
+    }
+
+    // Total weight of the MST edges
+    public long mstWeight() {
+        long sum = 0;
+        for (int v = 1; v <= V; ++v)
+            sum += mstWgt[v];
+        return sum;
+    }
+
+    // Saves the adjacency in its current form and order, the relabelling and
+    // the MST parent array so a restart can use fromSnapshot(). Packed lists
+    // are saved as they are. A snapshot that cannot be written is reported
+    // and otherwise ignored.
+    public void saveSnapshot(String graphFile) {
+        int[][] cols;
+        int v, k = 0;
+        Cursor c = new Cursor();
+
+        // columns 0-1 header and labels, 2-5 adjacency, 6-8 MST
+        cols = new int[9][];
+        cols[0] = new int[] { V, E, vertexOrder, mstRoot, packed == null ? 0 : 1,
+                wBytes, packed == null ? 0 : packed.length, packed == null ? 0 : wcol.length };
+        cols[1] = label == null ? new int[0] : label;
+        cols[6] = mst;
+        cols[7] = mstWgt;
+        cols[8] = mstSeq;
+
+        try {
+            if (packed != null) {
+                cols[2] = pOff;
+                cols[3] = wOff;
+                cols[4] = GraphSnapshot.toInts(packed);
+                cols[5] = GraphSnapshot.toInts(wcol);
+            } else {
+                // two ints per half-edge could not be mapped back in anyway
+                if (16L * E > Integer.MAX_VALUE)
+                    throw new IOException("graph has too many edges for a snapshot");
+
+                // one array per field, off[v] is where v's list starts
+                int[] off = new int[V + 2];
+                int[] vert = new int[2 * E];
+                int[] wgt = new int[2 * E];
+                for (v = 1; v <= V; ++v) {
+                    off[v] = k;
+                    for (c.start(v); c.next(); ) {
+                        wgt[k] = c.wgt;
+                        vert[k++] = c.vert;
+                    }
+                }
+                off[V + 1] = k;
+
+                cols[2] = off;
+                cols[3] = vert;
+                cols[4] = wgt;
+                cols[5] = new int[0];
+            }
+
+            GraphSnapshot.write(graphFile, "prim", srcSize, srcTime, cols);
+            System.out.println("\nSaved snapshot " + GraphSnapshot.fileFor(graphFile, "prim"));
+        } catch (IOException ex) {
+            System.out.println("\nCould not save snapshot " + GraphSnapshot.fileFor(graphFile, "prim") + ": " + ex);
+        }
+    }
+
+    // Rebuilds the graph and its MST from the snapshot of graphFile.
+    // Returns null if there is no snapshot, the graph file has changed, or
+    // the snapshot was taken with a different root, vertex order or packing.
+    // The columns arrive as heap copies (see GraphSnapshot). Packed arrays
+    // are then used as they are, apart from one more copy of the gap and
+    // weight bytes out of their int columns. Lists are rebuilt as 2E Nodes,
+    // so a list restart costs about as much memory as loading the text.
+    public static GraphLists fromSnapshot(String graphFile, int root, int order, boolean pack) {
+        File src = new File(graphFile);
+        long size = src.length(), time = src.lastModified();
+        int[][] cols = GraphSnapshot.read(graphFile, "prim");
+        GraphLists g;
+        int v, k;
+        Node t, tail;
+
+        if (cols == null || cols.length != 9 || cols[0].length != 8 || cols[0][2] != order
+                || cols[0][3] != root || cols[0][4] != (pack ? 1 : 0))
+            return null;
+
+        // a snapshot with a good checksum can still be from other code
+        if (!validSnapshot(cols)) {
+            System.out.println("\nSnapshot " + GraphSnapshot.fileFor(graphFile, "prim")
+                    + " does not match its graph, reloading");
+            return null;
+        }
+
+        g = new GraphLists();
+        g.V = cols[0][0];
+        g.E = cols[0][1];
+        g.vertexOrder = order;
+        g.mstRoot = root;
+        g.srcSize = size;
+        g.srcTime = time;
+
+        g.z = g.new Node();
+        g.z.next = g.z;
+        g.visited = new int[g.V + 1];
+
+        if (pack) {
+            // packed arrays are used as saved, nothing is sorted or encoded
+            g.wBytes = cols[0][5];
+            g.pOff = cols[2];
+            g.wOff = cols[3];
+            g.packed = GraphSnapshot.toBytes(cols[4], cols[0][6]);
+            g.wcol = GraphSnapshot.toBytes(cols[5], cols[0][7]);
+        } else {
+            // lists are rebuilt in the saved order, so traversals match the last run
+            g.adj = new Node[g.V + 1];
+            for (v = 1; v <= g.V; ++v) {
+                g.adj[v] = g.z;
+                tail = null;
+                for (k = cols[2][v]; k < cols[2][v + 1]; ++k) {
+                    t = g.new Node();
+                    t.vert = cols[3][k];
+                    t.wgt = cols[4][k];
+                    t.next = g.z;
+                    if (tail == null)
+                        g.adj[v] = t;
+                    else
+                        tail.next = t;
+                    tail = t;
+                }
+            }
+        }
+
+        if (cols[1].length != 0) {
+            g.label = cols[1];
+            g.place = new int[g.V + 1];
+            for (v = 1; v <= g.V; ++v)
+                g.place[g.label[v]] = v;
+        }
+
+        g.mst = cols[6];
+        g.mstWgt = cols[7];
+        g.mstSeq = cols[8];
+
+        System.out.println("\nLoaded graph and MST from snapshot " + GraphSnapshot.fileFor(graphFile, "prim"));
+        return g;
+    }
+
+
+    // True when every column of a snapshot has the size its header calls
+    // for, offsets only move forward and vertex ids are in 1..V, so
+    // fromSnapshot() can index the columns without further checks
+    private static boolean validSnapshot(int[][] cols) {
+        int[] h = cols[0];
+        int V = h[0], E = h[1], v;
+        boolean[] used;
+
+        if (V < 0 || E < 0 || cols[1].length != 0 && cols[1].length != V + 1
+                || cols[2].length != V + 2 || cols[6].length != V + 1 || cols[7].length != V + 1
+                || cols[8].length > V)
+            return false;
+
+        if (h[4] == 1) {
+            // pOff, wOff, packed bytes and weight bytes
+            if (h[5] != 1 && h[5] != 2 && h[5] != 4 || h[6] < 0 || h[7] < 0
+                    || cols[3].length != V + 2 || cols[4].length != (h[6] + 3L) / 4
+                    || cols[5].length != (h[7] + 3L) / 4
+                    || !ascending(cols[2], V, h[6]) || !ascending(cols[3], V, (long) h[7] / h[5]))
+                return false;
+        } else {
+            // list offsets, neighbours and weights
+            if (cols[3].length != 2L * E || cols[4].length != 2L * E || !ascending(cols[2], V, 2L * E))
+                return false;
+            for (int u : cols[3])
+                if (u < 1 || u > V)
+                    return false;
+        }
+
+        // labels must be a permutation of 1..V
+        if (cols[1].length != 0) {
+            used = new boolean[V + 1];
+            for (v = 1; v <= V; ++v) {
+                if (cols[1][v] < 1 || cols[1][v] > V || used[cols[1][v]])
+                    return false;
+                used[cols[1][v]] = true;
+            }
+        }
+
+        for (v = 1; v <= V; ++v)
+            if (cols[6][v] < 0 || cols[6][v] > V)
+                return false;
+        for (int u : cols[8])
+            if (u < 1 || u > V)
+                return false;
+        return true;
+    }
+
+    // off[1..V+1] starts at 0, never decreases and ends at last
+    private static boolean ascending(int[] off, int V, long last) {
+        if (off[1] != 0 || off[V + 1] != last)
+            return false;
+        for (int v = 1; v <= V; ++v)
+            if (off[v] > off[v + 1])
+                return false;
+        return true;
+    }
+
+    // Checks the MST against every edge of the graph with MSTVerifier,
+    // then prints how far each tree edge's weight could rise.
+    // Returns false if the MST is not a minimum spanning tree of the graph.
+    public boolean verifyMST()
+    {
+        int v, u, wgt, i, m = 0;
+        int[] eu, ev, ew, slack, bad, unknown;
+        Cursor c = new Cursor();
+
+        // each edge once, from its lower endpoint; loops never matter
+        eu = new int[E];
+        ev = new int[E];
+        ew = new int[E];
+        for (v = 1; v <= V; ++v) {
+            for (c.start(v); c.next(); ) {
+                u = c.vert;
+                wgt = c.wgt;
+
+                if (v < u) {
+                    eu[m] = v;
+                    ev[m] = u;
+                    ew[m++] = wgt;
+                }
+            }
+        }
+
+        MSTVerifier check = new MSTVerifier(V, mst, mstWgt);
+        System.out.println("\nVerifying MST against " + m + " edges:");
+
+        if (!check.isForest()) {
+            System.out.println("MST parent array has a cycle, it is not a tree");
+            return false;
+        }
+        if (check.trees() != 1) {
+            System.out.println("MST is not a spanning tree, it has " + check.trees() + " trees");
+            return false;
+        }
+
+        // the weights in mstWgt[] come from the engine under test,
+        // so every tree edge is looked up in the graph first
+        unknown = check.unknownTreeEdges(eu, ev, ew, m);
+        for (i = 0; i < unknown.length; ++i)
+            System.out.println("Edge " + toChar(mst[unknown[i]]) + "--(" + mstWgt[unknown[i]] + ")--"
+                    + toChar(unknown[i]) + " is not an edge of the graph");
+        if (unknown.length != 0)
+            return false;
+
+        bad = check.violations(eu, ev, ew, m);
+        for (i = 0; i < bad.length; ++i)
+            System.out.println("Edge " + toChar(eu[bad[i]]) + "--(" + ew[bad[i]] + ")--" + toChar(ev[bad[i]]));
+        if (bad.length != 0) {
+            System.out.println(bad.length + " edges above are lighter than the tree path they span");
+            return false;
+        }
+        System.out.println("MST verified, no edge is lighter than the tree path it spans");
+
+        slack = check.slack(eu, ev, ew, m);
+        System.out.println("\nWeight each MST edge can gain before the MST changes:");
+        for (int f = 1; f <= V; ++f) {
+            v = internal(f);
+            if (mst[v] != 0)
+                System.out.println("Edge " + toChar(mst[v]) + "--(" + mstWgt[v] + ")--" + toChar(v) + "  +"
+                        + (slack[v] == Integer.MAX_VALUE ? "any (bridge)" : String.valueOf(slack[v])));
+        }
+        System.out.println("");
+        return true;
+    }
+
 } // End of class GraphLists
 
 // Driver Code
 public class PrimLists {
     public static void main(String[] args) throws IOException {
         Scanner sc = new Scanner(System.in);
-        String fname;
-        int s;
+        String fname, outName;
+        int s, order, pack, ecc, verify;
+        MSTWriter out = null;
+
+        // java PrimLists bench <file> <order> compares vertex orders only
+        if (args.length == 3 && args[0].equals("bench")) {
+            GraphLists.benchmarkOrder(args[1], Integer.parseInt(args[2]), 10);
+            return;
+        }
 
         System.out.println("\n\nGraph traversal and Prim's Algorithm\n");
 
@@ -281,23 +1324,86 @@ public class PrimLists {
         System.out.print("\nEnter root vertex: ");
         s = sc.nextInt();
 
+        // the remaining answers are optional, input that stops here gets
+        // file order, no packing, no eccentricity and no verification
+        System.out.print("\nEnter vertex order (0 = file, 1 = BFS, 2 = RCM, 3 = degree): ");
+        order = nextIntOr(sc, GraphLists.FILE_ORDER);
+
+        System.out.print("\nPack adjacency lists (0 = no, 1 = yes): ");
+        pack = nextIntOr(sc, 0);
+
+        System.out.print("\nShow reach and eccentricity of every vertex (0 = no, 1 = yes): ");
+        ecc = nextIntOr(sc, 0);
+
+        // costs about as much as Prim's itself, so only when asked for
+        System.out.print("\nVerify the MST against every edge (0 = no, 1 = yes): ");
+        verify = nextIntOr(sc, 0);
+
+        // asked last and also optional, after the rest of the previous line
+        System.out.print("\nEnter file to write MST edges to, .bin for binary (blank for none): ");
+        if (sc.hasNextLine())
+            sc.nextLine();
+        outName = sc.hasNextLine() ? sc.nextLine().trim() : "";
+
         
         sc.close(); // Closing Scanner after use
 
-        GraphLists g = new GraphLists(fname);
+        // reuse the last run's results while the graph file is unchanged
+        GraphLists g = GraphLists.fromSnapshot(fname, s, order, pack == 1);
+        boolean restored = g != null;
+        if (!restored) {
+            // in file order the packed form is read without building the lists
+            if (pack == 1 && order == GraphLists.FILE_ORDER)
+                g = GraphLists.readPacked(fname);
+            if (g == null) {
+                g = new GraphLists(fname);
+                g.reorder(order);
+                if (pack == 1)
+                    g.pack();
+            }
+        }
         g.display();
 
         g.DF(s);
 
         g.BF(s);
 
+        // a BF from every vertex, so only when asked for
+        if (ecc == 1)
+            g.showEccentricity();
+
         System.out.println("\n\nPrim's Algorithm:\n");
 
-        g.MST_Prim(s);
+        // edges are written as Prim's adds them to the tree
+        if (!outName.isEmpty())
+            out = new MSTWriter(outName, outName.endsWith(".bin"));
+
+        if (!restored) {
+            g.MST_Prim(s, out);
+            g.saveSnapshot(fname);
+        }
+        else {
+            System.out.print("\n\nWeight of MST = " + g.mstWeight() + "\n");
+            if (out != null)
+                g.writeMST(out);
+        }
+
+        if (out != null) {
+            out.close();
+            System.out.println("\nWrote " + out.edges() + " MST edges of total weight " + out.total() + " to " + outName);
+        }
         g.showMST();
 
+        if (verify == 1)
+            g.verifyMST();
+
     } // End of main
 
+    // next answer, or dflt when the input has run out
+    private static int nextIntOr(Scanner sc, int dflt) {
+        return sc.hasNextInt() ? sc.nextInt() : dflt;
+    }
+
 } // End of class PrimLists
 
 